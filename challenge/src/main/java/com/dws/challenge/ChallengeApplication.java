@@ -2,8 +2,10 @@ package com.dws.challenge;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 
-@SpringBootApplication
+// The DataSource is only set up for accounts.repository=jdbc, see AccountsJdbcConfiguration
+@SpringBootApplication(exclude = DataSourceAutoConfiguration.class)
 public class ChallengeApplication {
 
 	public static void main(String[] args) {
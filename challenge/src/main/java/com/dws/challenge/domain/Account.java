@@ -5,6 +5,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import java.math.BigDecimal;
 import lombok.Data;
 
+import javax.validation.constraints.Digits;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
@@ -18,6 +19,7 @@ public class Account {
 
   @NotNull
   @Min(value = 0, message = "Initial balance must be positive.")
+  @Digits(integer = 17, fraction = 2, message = "Balance must not have more than 2 decimal places.")
   private BigDecimal balance;
 
   public Account(String accountId) {
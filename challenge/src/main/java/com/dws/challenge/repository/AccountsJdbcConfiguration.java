@@ -0,0 +1,16 @@
+package com.dws.challenge.repository;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Creates the DataSource, and with it the JdbcTemplate, transaction manager and schema
+ * initialization, only when accounts are stored in a database.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "accounts.repository", havingValue = "jdbc")
+@Import(DataSourceAutoConfiguration.class)
+public class AccountsJdbcConfiguration {
+}
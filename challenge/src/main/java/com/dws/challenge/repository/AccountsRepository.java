@@ -12,4 +12,14 @@ public interface AccountsRepository {
   void clearAccounts();
 
   void updateAccount(Account account);
+
+  /**
+   * Updates several accounts as one unit, e.g. both sides of a transfer, so a
+   * write-behind implementation never persists one of them without the others.
+   */
+  default void updateAccounts(Account... accounts) {
+    for (Account account : accounts) {
+      updateAccount(account);
+    }
+  }
 }
@@ -0,0 +1,572 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Database backed repository. Reads go through a bounded near cache and updates are
+ * written behind: repeated updates of the same account are coalesced and flushed in
+ * batches, either every {@code accounts.jdbc.flush-interval-ms} or as soon as
+ * {@code accounts.jdbc.flush-batch-size} accounts are dirty.
+ *
+ * <p>Each flush writes a snapshot of all pending updates in a single transaction, and
+ * accounts passed together to {@link #updateAccounts(Account...)} always end up in the
+ * same snapshot. The database is therefore only consistent at flush points: updates are
+ * durable once {@link #flush()} has returned, and updates made after the last completed
+ * flush are lost if the process dies. Pending updates are flushed on shutdown.
+ *
+ * <p>If the database rejects a snapshot because of a data integrity violation, its rows
+ * are written one by one so a single bad row cannot block all others. Rows the database
+ * keeps rejecting stay pending, are reported by {@link WriteBehindMetrics#getRejectedWrites()}
+ * and leave the database inconsistent for the transfers involving them until they are
+ * accepted.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "accounts.repository", havingValue = "jdbc")
+public class AccountsRepositoryJdbc implements AccountsRepository, DisposableBean {
+
+    private static final String INSERT_SQL = "INSERT INTO account (account_id, balance) VALUES (?, ?)";
+    private static final String SELECT_SQL = "SELECT account_id, balance FROM account WHERE account_id = ?";
+    private static final String UPDATE_SQL = "UPDATE account SET balance = ? WHERE account_id = ?";
+    private static final String DELETE_ALL_SQL = "DELETE FROM account";
+
+    // Matches the DECIMAL(19, 2) balance column
+    private static final int BALANCE_SCALE = 2;
+
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final long flushIntervalMillis;
+
+    private final int flushBatchSize;
+
+    private final int maxPendingWrites;
+
+    // The near cache keeps recently used accounts strongly reachable, instances maps every
+    // account still referenced anywhere to its only in-memory copy
+    private final NearCache nearCache;
+    private final Map<String, AccountReference> instances = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Account> collectedAccounts = new ReferenceQueue<>();
+
+    // Bumped after every database change, so a load racing with it can be detected and repeated
+    private final AtomicLong databaseVersion = new AtomicLong();
+
+    // Dirty accounts stay here until their row is written
+    private final Map<String, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+
+    // Accounts whose pending row the database rejected, written one by one on every flush
+    private final Set<String> rejectedAccountIds = ConcurrentHashMap.newKeySet();
+
+    // Updates hold the read lock while queueing, a flush takes the write lock to snapshot the queue
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final Object capacityMonitor = new Object();
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final ScheduledExecutorService flushExecutor;
+
+    // Guarded by flushLock
+    private long backoffMillis;
+    private volatile long backoffUntilNanos = System.nanoTime();
+
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private volatile long lastFlushLagMillis;
+    private volatile long lastFlushDurationMillis;
+
+    @Autowired
+    public AccountsRepositoryJdbc(JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${accounts.jdbc.near-cache-size:10000}") int nearCacheSize,
+                                  @Value("${accounts.jdbc.flush-interval-ms:100}") long flushIntervalMillis,
+                                  @Value("${accounts.jdbc.flush-batch-size:500}") int flushBatchSize,
+                                  @Value("${accounts.jdbc.max-pending-writes:100000}") int maxPendingWrites) {
+        if (nearCacheSize <= 0 || flushIntervalMillis <= 0 || flushBatchSize <= 0 || maxPendingWrites <= 0) {
+            throw new IllegalArgumentException(
+                    "Near cache size, flush interval, flush batch size and max pending writes must be positive");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.flushBatchSize = flushBatchSize;
+        this.maxPendingWrites = maxPendingWrites;
+        this.nearCache = new NearCache(nearCacheSize);
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "accounts-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flushExecutor.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the balance has more than 2 decimal places, which
+     * the database could not store without rounding
+     */
+    @Override
+    public void createAccount(Account account) throws DuplicateAccountIdException {
+        if (account.getBalance().stripTrailingZeros().scale() > BALANCE_SCALE) {
+            throw new IllegalArgumentException(
+                    "Balance of account " + account.getAccountId() + " must not have more than 2 decimal places");
+        }
+        try {
+            jdbcTemplate.update(INSERT_SQL, account.getAccountId(), account.getBalance());
+        } catch (DuplicateKeyException e) {
+            throw new DuplicateAccountIdException(
+                    "Account id " + account.getAccountId() + " already exists!");
+        }
+        register(account);
+    }
+
+    /**
+     * Returns the same instance for an account as long as anything references it, which
+     * callers rely on when synchronizing on accounts.
+     */
+    @Override
+    public Account getAccount(String accountId) {
+        Account account = lookup(accountId);
+        if (account != null) {
+            return account;
+        }
+
+        while (true) {
+            long version = databaseVersion.get();
+            List<Account> loaded = jdbcTemplate.query(SELECT_SQL,
+                    (rs, rowNum) -> new Account(rs.getString("account_id"), rs.getBigDecimal("balance")), accountId);
+            if (loaded.isEmpty()) {
+                account = lookup(accountId);
+                if (account != null || version == databaseVersion.get()) {
+                    return account;
+                }
+                continue;
+            }
+
+            Account candidate = loaded.get(0);
+            // Another thread may have loaded or updated it meanwhile, keep the instance already handed out
+            AccountReference reference = instances.compute(accountId, (id, current) -> {
+                if (current != null && current.get() != null) {
+                    return current;
+                }
+                return version == databaseVersion.get() ? new AccountReference(candidate, collectedAccounts) : null;
+            });
+            account = reference == null ? null : reference.get();
+            if (account != null) {
+                nearCache.put(accountId, account);
+                return account;
+            }
+            // A flush or clear committed while loading, the row read may predate it
+        }
+    }
+
+    @Override
+    public void clearAccounts() {
+        flushLock.lock();
+        snapshotLock.writeLock().lock();
+        try {
+            pendingWrites.clear();
+            rejectedAccountIds.clear();
+            nearCache.clear();
+            instances.clear();
+            jdbcTemplate.update(DELETE_ALL_SQL);
+            databaseVersion.incrementAndGet();
+        } finally {
+            snapshotLock.writeLock().unlock();
+            flushLock.unlock();
+        }
+        synchronized (capacityMonitor) {
+            capacityMonitor.notifyAll();
+        }
+    }
+
+    @Override
+    public void updateAccount(Account account) {
+        updateAccounts(account);
+    }
+
+    /**
+     * Queues the current balances of the given accounts. When the queue holds
+     * {@code accounts.jdbc.max-pending-writes} accounts, e.g. during a database outage,
+     * callers adding further accounts wait until a flush has made room. The limit is
+     * soft: callers admitted concurrently, or interrupted while waiting, may exceed it.
+     */
+    @Override
+    public void updateAccounts(Account... accounts) {
+        awaitCapacity(accounts);
+
+        long now = System.nanoTime();
+        snapshotLock.readLock().lock();
+        try {
+            for (Account account : accounts) {
+                BigDecimal balance;
+                synchronized (account) {
+                    balance = account.getBalance();
+                }
+                // A fresh entry per update lets a running flush detect that it wrote a superseded value
+                pendingWrites.compute(account.getAccountId(),
+                        (id, previous) -> new PendingWrite(account, balance,
+                                previous == null ? now : previous.dirtySinceNanos));
+                register(account);
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+
+        if (pendingWrites.size() >= flushBatchSize && !isBackingOff()) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * Writes all pending updates to the database in one transaction and blocks until
+     * they are committed. Rows the database rejects stay pending, see
+     * {@link WriteBehindMetrics#getRejectedWrites()}.
+     * @throws org.springframework.dao.DataAccessException if the database cannot be written;
+     * the transaction is rolled back and the updates stay pending for the next flush
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushRequested.set(false);
+            List<PendingWrite> snapshot;
+            snapshotLock.writeLock().lock();
+            try {
+                snapshot = new ArrayList<>(pendingWrites.values());
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+            if (!snapshot.isEmpty()) {
+                writeSnapshot(snapshot);
+            }
+            backoffMillis = 0;
+            backoffUntilNanos = System.nanoTime();
+        } catch (RuntimeException e) {
+            failedFlushes.incrementAndGet();
+            backoffMillis = Math.min(Math.max(backoffMillis * 2, flushIntervalMillis), MAX_BACKOFF_MILLIS);
+            backoffUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+            throw e;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public WriteBehindMetrics getMetrics() {
+        long now = System.nanoTime();
+        long oldestDirtySince = now;
+        for (PendingWrite pendingWrite : pendingWrites.values()) {
+            oldestDirtySince = Math.min(oldestDirtySince, pendingWrite.dirtySinceNanos);
+        }
+        return new WriteBehindMetrics(pendingWrites.size(),
+                TimeUnit.NANOSECONDS.toMillis(now - oldestDirtySince),
+                lastFlushLagMillis,
+                lastFlushDurationMillis,
+                flushCount.get(),
+                flushedRows.get(),
+                failedFlushes.get(),
+                failedWrites.get(),
+                rejectedAccountIds.size());
+    }
+
+    @Override
+    public void destroy() {
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void writeSnapshot(List<PendingWrite> snapshot) {
+        long start = System.nanoTime();
+        List<PendingWrite> batch = new ArrayList<>(snapshot.size());
+        List<PendingWrite> singles = new ArrayList<>();
+        for (PendingWrite pendingWrite : snapshot) {
+            (rejectedAccountIds.contains(pendingWrite.account.getAccountId()) ? singles : batch).add(pendingWrite);
+        }
+
+        List<PendingWrite> written = new ArrayList<>(snapshot.size());
+        int missingRows = 0;
+        try {
+            if (!batch.isEmpty()) {
+                try {
+                    missingRows += writeInTransaction(batch);
+                    written.addAll(batch);
+                } catch (DataIntegrityViolationException e) {
+                    log.warn("Write-behind flush of {} accounts rejected by the database, writing them one by one",
+                            batch.size(), e);
+                    singles.addAll(batch);
+                }
+            }
+            for (PendingWrite pendingWrite : singles) {
+                String accountId = pendingWrite.account.getAccountId();
+                try {
+                    missingRows += writeInTransaction(Collections.singletonList(pendingWrite));
+                    written.add(pendingWrite);
+                    if (rejectedAccountIds.remove(accountId)) {
+                        log.info("Write-behind update of account {} accepted again", accountId);
+                    }
+                } catch (DataIntegrityViolationException e) {
+                    if (rejectedAccountIds.add(accountId)) {
+                        log.error("Write-behind update of account {} to balance {} rejected by the database, "
+                                + "keeping it pending", accountId, pendingWrite.balance, e);
+                    }
+                }
+            }
+        } finally {
+            // Also runs when the database fails half way through the single writes, for the rows committed so far
+            if (!written.isEmpty()) {
+                completeWrites(written, start, missingRows);
+            }
+        }
+    }
+
+    private int writeInTransaction(List<PendingWrite> rows) {
+        int[][] updateCounts = transactionTemplate.execute(status ->
+                jdbcTemplate.batchUpdate(UPDATE_SQL, rows, flushBatchSize, (ps, pendingWrite) -> {
+                    ps.setBigDecimal(1, pendingWrite.balance);
+                    ps.setString(2, pendingWrite.account.getAccountId());
+                }));
+
+        int index = 0;
+        int missingRows = 0;
+        for (int[] batchCounts : updateCounts) {
+            for (int updateCount : batchCounts) {
+                if (updateCount == 0) {
+                    missingRows++;
+                    log.error("Write-behind update of account {} matched no row, update dropped",
+                            rows.get(index).account.getAccountId());
+                }
+                index++;
+            }
+        }
+        return missingRows;
+    }
+
+    private void completeWrites(List<PendingWrite> written, long start, int missingRows) {
+        databaseVersion.incrementAndGet();
+
+        long oldestDirtySince = start;
+        for (PendingWrite pendingWrite : written) {
+            oldestDirtySince = Math.min(oldestDirtySince, pendingWrite.dirtySinceNanos);
+            // Leaves the entry in place if the account was updated again while writing
+            pendingWrites.remove(pendingWrite.account.getAccountId(), pendingWrite);
+        }
+        synchronized (capacityMonitor) {
+            capacityMonitor.notifyAll();
+        }
+
+        long end = System.nanoTime();
+        lastFlushLagMillis = TimeUnit.NANOSECONDS.toMillis(end - oldestDirtySince);
+        lastFlushDurationMillis = TimeUnit.NANOSECONDS.toMillis(end - start);
+        flushCount.incrementAndGet();
+        flushedRows.addAndGet(written.size() - missingRows);
+        failedWrites.addAndGet(missingRows);
+    }
+
+    private void flushQuietly() {
+        flushRequested.set(false);
+        if (isBackingOff()) {
+            return;
+        }
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Write-behind flush of {} accounts failed, retrying in {} ms",
+                    pendingWrites.size(), backoffMillis, e);
+        }
+    }
+
+    private void requestFlush() {
+        if (flushExecutor.isShutdown() || !flushRequested.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            flushExecutor.execute(this::flushQuietly);
+        } catch (RejectedExecutionException e) {
+            // Shut down concurrently, destroy() flushes what is pending
+            flushRequested.set(false);
+        }
+    }
+
+    private boolean isBackingOff() {
+        return System.nanoTime() - backoffUntilNanos < 0;
+    }
+
+    private void awaitCapacity(Account... accounts) {
+        if (pendingWrites.size() < maxPendingWrites) {
+            return;
+        }
+        synchronized (capacityMonitor) {
+            while (pendingWrites.size() >= maxPendingWrites && addsPendingWrite(accounts)
+                    && !flushExecutor.isShutdown()) {
+                requestFlush();
+                try {
+                    capacityMonitor.wait(flushIntervalMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean addsPendingWrite(Account... accounts) {
+        for (Account account : accounts) {
+            if (!pendingWrites.containsKey(account.getAccountId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Account lookup(String accountId) {
+        expungeCollected();
+        Account account = nearCache.get(accountId);
+        if (account != null) {
+            return account;
+        }
+        AccountReference reference = instances.get(accountId);
+        account = reference == null ? null : reference.get();
+        if (account != null) {
+            nearCache.put(accountId, account);
+        }
+        return account;
+    }
+
+    private void register(Account account) {
+        AccountReference reference = instances.get(account.getAccountId());
+        if (reference != null && reference.get() == account) {
+            // Already the registered instance, getAccount has touched its near cache entry
+            return;
+        }
+        expungeCollected();
+        instances.put(account.getAccountId(), new AccountReference(account, collectedAccounts));
+        nearCache.put(account.getAccountId(), account);
+    }
+
+    private void expungeCollected() {
+        AccountReference reference;
+        while ((reference = (AccountReference) collectedAccounts.poll()) != null) {
+            instances.remove(reference.accountId, reference);
+        }
+    }
+
+    private static final class PendingWrite {
+
+        private final Account account;
+
+        private final BigDecimal balance;
+
+        private final long dirtySinceNanos;
+
+        private PendingWrite(Account account, BigDecimal balance, long dirtySinceNanos) {
+            this.account = account;
+            this.balance = balance;
+            this.dirtySinceNanos = dirtySinceNanos;
+        }
+    }
+
+    private static final class AccountReference extends WeakReference<Account> {
+
+        private final String accountId;
+
+        private AccountReference(Account account, ReferenceQueue<Account> queue) {
+            super(account, queue);
+            this.accountId = account.getAccountId();
+        }
+    }
+
+    /**
+     * LRU cache split into independently locked stripes, so concurrent transfers on
+     * different accounts rarely contend. Each stripe evicts on its own, the total size
+     * therefore only approximates the configured one.
+     */
+    private static final class NearCache {
+
+        private static final int MAX_STRIPES = 16;
+
+        private final List<Map<String, Account>> stripes;
+
+        private NearCache(int maxSize) {
+            int stripeCount = Math.min(MAX_STRIPES, maxSize);
+            int stripeSize = (maxSize + stripeCount - 1) / stripeCount;
+            this.stripes = new ArrayList<>(stripeCount);
+            for (int i = 0; i < stripeCount; i++) {
+                stripes.add(Collections.synchronizedMap(new LruStripe(stripeSize)));
+            }
+        }
+
+        private Account get(String accountId) {
+            return stripe(accountId).get(accountId);
+        }
+
+        private void put(String accountId, Account account) {
+            stripe(accountId).put(accountId, account);
+        }
+
+        private void clear() {
+            stripes.forEach(Map::clear);
+        }
+
+        private Map<String, Account> stripe(String accountId) {
+            return stripes.get(Math.floorMod(accountId.hashCode(), stripes.size()));
+        }
+    }
+
+    private static final class LruStripe extends LinkedHashMap<String, Account> {
+
+        private final int maxSize;
+
+        private LruStripe(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Account> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
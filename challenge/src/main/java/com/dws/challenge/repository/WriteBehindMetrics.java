@@ -0,0 +1,41 @@
+package com.dws.challenge.repository;
+
+import lombok.Value;
+
+/**
+ * Point-in-time snapshot of the write-behind queue of {@link AccountsRepositoryJdbc}.
+ */
+@Value
+public class WriteBehindMetrics {
+
+    /** Number of accounts with updates not yet written to the database. */
+    int pendingWrites;
+
+    /** Age of the oldest unflushed update, 0 when nothing is pending. */
+    long currentFlushLagMillis;
+
+    /** Age of the oldest update written by the last successful flush, at commit time. */
+    long lastFlushLagMillis;
+
+    /** Time spent writing and committing the last successful flush. */
+    long lastFlushDurationMillis;
+
+    /** Number of successful flushes that wrote at least one account. */
+    long flushCount;
+
+    /** Number of account rows written by successful flushes. */
+    long flushedRows;
+
+    /** Number of flushes rolled back because the database write failed. */
+    long failedFlushes;
+
+    /** Number of account updates dropped because no matching row existed. */
+    long failedWrites;
+
+    /**
+     * Number of accounts whose pending update the database rejects, e.g. on a constraint
+     * violation. They are retried one by one on every flush, and until then the database
+     * is inconsistent for the transfers involving them.
+     */
+    int rejectedWrites;
+}
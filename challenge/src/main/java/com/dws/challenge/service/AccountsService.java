@@ -33,12 +33,16 @@ public class AccountsService {
    * @param accountFromId Id of the source account
    * @param accountToId Id of target account
    * @param amount the amount to be transferred
-   * @throws IllegalArgumentException if the amount is not positive or insufficient balance in account of source
+   * @throws IllegalArgumentException if the amount is not positive, has more than 2 decimal places or
+   * insufficient balance in account of source
    */
   public void transferMoney(String accountFromId, String accountToId, BigDecimal amount) {
     if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
       throw new IllegalArgumentException("Transfer amount must be positive");
     }
+    if (amount.stripTrailingZeros().scale() > 2) {
+      throw new IllegalArgumentException("Transfer amount must not have more than 2 decimal places");
+    }
 
     Account accountFrom = this.accountsRepository.getAccount(accountFromId);
     Account accountTo = this.accountsRepository.getAccount(accountToId);
@@ -58,9 +62,8 @@ public class AccountsService {
         accountFrom.withdraw(amount);
         accountTo.deposit(amount);
 
-        // Update the accounts in the repository
-        this.accountsRepository.updateAccount(accountFrom);
-        this.accountsRepository.updateAccount(accountTo);
+        // Update both accounts in the repository as one unit
+        this.accountsRepository.updateAccounts(accountFrom, accountTo);
 
         // Notify both account holders
         emailNotificationService.notifyAboutTransfer(accountFrom , "Amount credited : " + amount + " to account " + accountTo.getAccountId());
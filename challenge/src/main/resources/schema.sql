@@ -0,0 +1,5 @@
+-- Balances have at most 2 decimal places, Account validation and AccountsService reject larger scales
+CREATE TABLE IF NOT EXISTS account (
+  account_id VARCHAR(255) PRIMARY KEY,
+  balance    DECIMAL(19, 2) NOT NULL
+);
@@ -54,8 +54,7 @@ class AccountServiceExtendedTest {
         verify(notificationService).notifyAboutTransfer(accountFrom, "Amount credited : 200 to account 2");
         verify(notificationService).notifyAboutTransfer(accountTo, "Amount debited : 200 from account 1");
 
-        verify(accountsRepository).updateAccount(accountFrom);
-        verify(accountsRepository).updateAccount(accountTo);
+        verify(accountsRepository).updateAccounts(accountFrom, accountTo);
     }
 
     @Test
@@ -69,6 +68,7 @@ class AccountServiceExtendedTest {
 
         verify(notificationService, never()).notifyAboutTransfer(any(), anyString());
         verify(accountsRepository, never()).updateAccount(any());
+        verify(accountsRepository, never()).updateAccounts(any(Account.class), any(Account.class));
     }
 
     @Test
@@ -82,6 +82,20 @@ class AccountServiceExtendedTest {
 
         verify(notificationService, never()).notifyAboutTransfer(any(), anyString());
         verify(accountsRepository, never()).updateAccount(any());
+        verify(accountsRepository, never()).updateAccounts(any(Account.class), any(Account.class));
+    }
+
+    @Test
+    void testTransferMoney_moreThanTwoDecimalPlaces() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            accountsService.transferMoney("1", "2", new BigDecimal("0.001"));
+        });
+
+        assertEquals(new BigDecimal("1000"), accountFrom.getBalance());
+        assertEquals(new BigDecimal("500"), accountTo.getBalance());
+
+        verify(notificationService, never()).notifyAboutTransfer(any(), anyString());
+        verify(accountsRepository, never()).updateAccounts(any(Account.class), any(Account.class));
     }
 
     @Test
@@ -116,10 +130,8 @@ class AccountServiceExtendedTest {
         verify(notificationService).notifyAboutTransfer(accountFrom2, "Amount credited : 100 to account 4");
         verify(notificationService).notifyAboutTransfer(accountTo2, "Amount debited : 100 from account 3");
 
-        verify(accountsRepository).updateAccount(accountFrom1);
-        verify(accountsRepository).updateAccount(accountTo1);
-        verify(accountsRepository).updateAccount(accountFrom2);
-        verify(accountsRepository).updateAccount(accountTo2);
+        verify(accountsRepository).updateAccounts(accountFrom1, accountTo1);
+        verify(accountsRepository).updateAccounts(accountFrom2, accountTo2);
     }
 
 }
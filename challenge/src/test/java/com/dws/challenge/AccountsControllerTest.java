@@ -74,6 +74,12 @@ class AccountsControllerTest {
       .content("{\"accountId\":\"Id-123\"}")).andExpect(status().isBadRequest());
   }
 
+  @Test
+  void createAccountTooManyDecimalPlaces() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
+      .content("{\"accountId\":\"Id-123\",\"balance\":10.001}")).andExpect(status().isBadRequest());
+  }
+
   @Test
   void createAccountNoBody() throws Exception {
     this.mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON))
@@ -0,0 +1,409 @@
+package com.dws.challenge;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.repository.AccountsRepositoryJdbc;
+import com.dws.challenge.repository.WriteBehindMetrics;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.EmailNotificationService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountsRepositoryJdbcTest {
+
+    private EmbeddedDatabase database;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private AccountsRepositoryJdbc accountsRepository;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        // Long interval so only explicit or size triggered flushes happen during a test
+        accountsRepository = newRepository(2, TimeUnit.HOURS.toMillis(1), 3, 1000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        accountsRepository.destroy();
+        database.shutdown();
+    }
+
+    @Test
+    void testCreateAccount_persistsImmediately() {
+        Account account = new Account("1", new BigDecimal("1000.00"));
+        accountsRepository.createAccount(account);
+
+        assertSame(account, accountsRepository.getAccount("1"));
+        assertEquals(new BigDecimal("1000.00"), balanceInDatabase("1"));
+    }
+
+    @Test
+    void testCreateAccount_duplicateId() {
+        accountsRepository.createAccount(new Account("1", new BigDecimal("1000.00")));
+
+        assertThrows(DuplicateAccountIdException.class,
+                () -> accountsRepository.createAccount(new Account("1", new BigDecimal("5.00"))));
+    }
+
+    @Test
+    void testGetAccount_loadsFromDatabaseOnCacheMiss() {
+        jdbcTemplate.update("INSERT INTO account (account_id, balance) VALUES (?, ?)", "9", new BigDecimal("42.00"));
+
+        Account account = accountsRepository.getAccount("9");
+
+        assertEquals(new BigDecimal("42.00"), account.getBalance());
+        assertSame(account, accountsRepository.getAccount("9"));
+        assertNull(accountsRepository.getAccount("unknown"));
+    }
+
+    @Test
+    void testGetAccount_sameInstanceWhileReferencedAfterEviction() {
+        Account account = new Account("1", new BigDecimal("1000.00"));
+        accountsRepository.createAccount(account);
+
+        // Near cache holds two entries, these push the clean account 1 out
+        accountsRepository.createAccount(new Account("2"));
+        accountsRepository.createAccount(new Account("3"));
+
+        assertSame(account, accountsRepository.getAccount("1"));
+    }
+
+    @Test
+    void testUpdateAccount_coalescedUntilFlush() {
+        Account account = new Account("1", new BigDecimal("1000.00"));
+        accountsRepository.createAccount(account);
+
+        account.withdraw(new BigDecimal("100.00"));
+        accountsRepository.updateAccount(account);
+        account.withdraw(new BigDecimal("100.00"));
+        accountsRepository.updateAccount(account);
+
+        assertEquals(new BigDecimal("1000.00"), balanceInDatabase("1"));
+        assertEquals(1, accountsRepository.getMetrics().getPendingWrites());
+
+        accountsRepository.flush();
+
+        assertEquals(new BigDecimal("800.00"), balanceInDatabase("1"));
+        WriteBehindMetrics metrics = accountsRepository.getMetrics();
+        assertEquals(0, metrics.getPendingWrites());
+        assertEquals(0, metrics.getCurrentFlushLagMillis());
+        assertEquals(1, metrics.getFlushCount());
+        assertEquals(1, metrics.getFlushedRows());
+    }
+
+    @Test
+    void testUpdateAccount_dirtyAccountSurvivesCacheEviction() {
+        Account account = new Account("1", new BigDecimal("1000.00"));
+        accountsRepository.createAccount(account);
+        account.deposit(new BigDecimal("1.00"));
+        accountsRepository.updateAccount(account);
+
+        accountsRepository.createAccount(new Account("2"));
+        accountsRepository.createAccount(new Account("3"));
+
+        assertSame(account, accountsRepository.getAccount("1"));
+    }
+
+    @Test
+    void testUpdateAccount_flushesWhenBatchSizeReached() throws InterruptedException {
+        for (int i = 1; i <= 3; i++) {
+            Account account = new Account(String.valueOf(i), new BigDecimal("10.00"));
+            accountsRepository.createAccount(account);
+            account.deposit(new BigDecimal("5.00"));
+            accountsRepository.updateAccount(account);
+        }
+
+        awaitNoPendingWrites(accountsRepository);
+
+        assertEquals(0, accountsRepository.getMetrics().getPendingWrites());
+        assertEquals(new BigDecimal("15.00"), balanceInDatabase("3"));
+    }
+
+    @Test
+    void testUpdateAccount_afterDestroyDoesNotThrow() {
+        accountsRepository.destroy();
+
+        for (int i = 1; i <= 3; i++) {
+            Account account = new Account(String.valueOf(i), new BigDecimal("10.00"));
+            accountsRepository.createAccount(account);
+            assertDoesNotThrow(() -> accountsRepository.updateAccount(account));
+        }
+    }
+
+    @Test
+    void testUpdateAccount_waitsForCapacity() throws InterruptedException {
+        AccountsRepositoryJdbc boundedRepository = newRepository(10, 10, 100, 1);
+        try {
+            Account first = new Account("1", new BigDecimal("10.00"));
+            Account second = new Account("2", new BigDecimal("10.00"));
+            boundedRepository.createAccount(first);
+            boundedRepository.createAccount(second);
+
+            boundedRepository.updateAccount(first);
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> boundedRepository.updateAccount(second));
+
+            awaitNoPendingWrites(boundedRepository);
+            assertTrue(boundedRepository.getMetrics().getFlushCount() >= 2);
+        } finally {
+            boundedRepository.destroy();
+        }
+    }
+
+    @Test
+    void testFlush_failedFlushRollsBackAndRetries() {
+        Account first = new Account("1", new BigDecimal("10.00"));
+        Account second = new Account("2", new BigDecimal("10.00"));
+        accountsRepository.createAccount(first);
+        accountsRepository.createAccount(second);
+        first.deposit(new BigDecimal("40.00"));
+        second.deposit(new BigDecimal("140.00"));
+        accountsRepository.updateAccounts(first, second);
+
+        jdbcTemplate.execute("ALTER TABLE account RENAME TO account_moved");
+        assertThrows(DataAccessException.class, () -> accountsRepository.flush());
+        jdbcTemplate.execute("ALTER TABLE account_moved RENAME TO account");
+
+        assertEquals(new BigDecimal("10.00"), balanceInDatabase("1"));
+        WriteBehindMetrics metrics = accountsRepository.getMetrics();
+        assertEquals(2, metrics.getPendingWrites());
+        assertEquals(1, metrics.getFailedFlushes());
+        assertEquals(0, metrics.getFlushCount());
+
+        accountsRepository.flush();
+
+        assertEquals(new BigDecimal("50.00"), balanceInDatabase("1"));
+        assertEquals(new BigDecimal("150.00"), balanceInDatabase("2"));
+        metrics = accountsRepository.getMetrics();
+        assertEquals(0, metrics.getPendingWrites());
+        assertEquals(1, metrics.getFailedFlushes());
+        assertEquals(1, metrics.getFlushCount());
+        assertEquals(2, metrics.getFlushedRows());
+    }
+
+    @Test
+    void testFlush_successfulFlushEndsBackoff() throws InterruptedException {
+        Account account = new Account("1", new BigDecimal("10.00"));
+        accountsRepository.createAccount(account);
+        accountsRepository.updateAccount(account);
+        jdbcTemplate.execute("ALTER TABLE account RENAME TO account_moved");
+        assertThrows(DataAccessException.class, () -> accountsRepository.flush());
+        jdbcTemplate.execute("ALTER TABLE account_moved RENAME TO account");
+
+        accountsRepository.flush();
+
+        // Reaching the batch size flushes right away again instead of waiting out the backoff
+        for (int i = 2; i <= 4; i++) {
+            Account other = new Account(String.valueOf(i), new BigDecimal("10.00"));
+            accountsRepository.createAccount(other);
+            accountsRepository.updateAccount(other);
+        }
+        awaitNoPendingWrites(accountsRepository);
+
+        assertEquals(0, accountsRepository.getMetrics().getPendingWrites());
+        assertEquals(2, accountsRepository.getMetrics().getFlushCount());
+    }
+
+    @Test
+    void testFlush_rejectedRowDoesNotBlockOthers() {
+        Account first = new Account("1", new BigDecimal("10.00"));
+        Account second = new Account("2", new BigDecimal("10.00"));
+        accountsRepository.createAccount(first);
+        accountsRepository.createAccount(second);
+        jdbcTemplate.execute("ALTER TABLE account ADD CONSTRAINT balance_limit CHECK (balance < 100)");
+
+        first.deposit(new BigDecimal("40.00"));
+        second.deposit(new BigDecimal("140.00"));
+        accountsRepository.updateAccounts(first, second);
+
+        accountsRepository.flush();
+
+        assertEquals(new BigDecimal("50.00"), balanceInDatabase("1"));
+        assertEquals(new BigDecimal("10.00"), balanceInDatabase("2"));
+        WriteBehindMetrics metrics = accountsRepository.getMetrics();
+        assertEquals(1, metrics.getPendingWrites());
+        assertEquals(1, metrics.getRejectedWrites());
+        assertEquals(0, metrics.getFailedFlushes());
+
+        jdbcTemplate.execute("ALTER TABLE account DROP CONSTRAINT balance_limit");
+        accountsRepository.flush();
+
+        assertEquals(new BigDecimal("150.00"), balanceInDatabase("2"));
+        metrics = accountsRepository.getMetrics();
+        assertEquals(0, metrics.getPendingWrites());
+        assertEquals(0, metrics.getRejectedWrites());
+        assertEquals(2, metrics.getFlushedRows());
+    }
+
+    @Test
+    void testFlush_reportsLag() throws InterruptedException {
+        Account account = new Account("1", new BigDecimal("10.00"));
+        accountsRepository.createAccount(account);
+        accountsRepository.updateAccount(account);
+
+        Thread.sleep(50);
+        assertTrue(accountsRepository.getMetrics().getCurrentFlushLagMillis() >= 50);
+
+        accountsRepository.flush();
+
+        WriteBehindMetrics metrics = accountsRepository.getMetrics();
+        assertTrue(metrics.getLastFlushLagMillis() >= 50);
+        assertTrue(metrics.getLastFlushDurationMillis() <= metrics.getLastFlushLagMillis());
+    }
+
+    @Test
+    void testFlush_countsUpdatesMatchingNoRow() {
+        accountsRepository.updateAccount(new Account("missing", new BigDecimal("10.00")));
+
+        accountsRepository.flush();
+
+        WriteBehindMetrics metrics = accountsRepository.getMetrics();
+        assertEquals(0, metrics.getPendingWrites());
+        assertEquals(1, metrics.getFailedWrites());
+        assertEquals(0, metrics.getFlushedRows());
+    }
+
+    @Test
+    void testClearAccounts_dropsPendingWrites() {
+        Account account = new Account("1", new BigDecimal("1000.00"));
+        accountsRepository.createAccount(account);
+        accountsRepository.updateAccount(account);
+
+        accountsRepository.clearAccounts();
+
+        assertNull(accountsRepository.getAccount("1"));
+        assertEquals(0, accountsRepository.getMetrics().getPendingWrites());
+    }
+
+    @Test
+    void testCreateAccount_rejectsMoreThanTwoDecimalPlaces() {
+        assertThrows(IllegalArgumentException.class,
+                () -> accountsRepository.createAccount(new Account("1", new BigDecimal("10.001"))));
+
+        assertNull(accountsRepository.getAccount("1"));
+    }
+
+    @Test
+    void testGetAccount_reloadedAfterCollectionKeepsBalance() throws InterruptedException {
+        AccountsService accountsService = new AccountsService(accountsRepository, new EmailNotificationService());
+        accountsRepository.createAccount(new Account("1", new BigDecimal("1000.00")));
+        accountsRepository.createAccount(new Account("2", new BigDecimal("0.00")));
+
+        accountsService.transferMoney("1", "2", new BigDecimal("333.33"));
+        assertThrows(IllegalArgumentException.class,
+                () -> accountsService.transferMoney("1", "2", new BigDecimal("0.001")));
+        accountsRepository.flush();
+
+        // Push both accounts out of the near cache and wait until their instances are collected
+        for (int i = 3; i <= 20; i++) {
+            accountsRepository.createAccount(new Account(String.valueOf(i)));
+        }
+        WeakReference<Account> first = new WeakReference<>(accountsRepository.getAccount("1"));
+        WeakReference<Account> second = new WeakReference<>(accountsRepository.getAccount("2"));
+        for (int i = 3; i <= 20; i++) {
+            accountsRepository.getAccount(String.valueOf(i));
+        }
+        for (int i = 0; i < 50 && (first.get() != null || second.get() != null); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(first.get());
+        assertNull(second.get());
+
+        assertEquals(new BigDecimal("666.67"), accountsRepository.getAccount("1").getBalance());
+        assertEquals(new BigDecimal("333.33"), accountsRepository.getAccount("2").getBalance());
+    }
+
+    @Test
+    void testTransferMoney_concurrentWithNearCacheSmallerThanAccounts() throws Exception {
+        AccountsRepositoryJdbc transferRepository = newRepository(2, 5, 4, 1000);
+        try {
+            AccountsService accountsService = new AccountsService(transferRepository, new EmailNotificationService());
+            int accountCount = 10;
+            for (int i = 0; i < accountCount; i++) {
+                transferRepository.createAccount(new Account(String.valueOf(i), new BigDecimal("1000.00")));
+            }
+
+            ExecutorService executorService = Executors.newFixedThreadPool(8);
+            List<Future<?>> transfers = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                transfers.add(executorService.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 500; i++) {
+                        String from = String.valueOf(random.nextInt(accountCount));
+                        String to = String.valueOf((Integer.parseInt(from) + 1 + random.nextInt(accountCount - 1))
+                                % accountCount);
+                        accountsService.transferMoney(from, to, new BigDecimal("1.00"));
+                        if (i % 100 == 0) {
+                            // Lets unreferenced accounts be collected, so they are reloaded from the database
+                            System.gc();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> transfer : transfers) {
+                transfer.get(1, TimeUnit.MINUTES);
+            }
+            executorService.shutdown();
+
+            transferRepository.flush();
+
+            BigDecimal inMemoryTotal = BigDecimal.ZERO;
+            for (int i = 0; i < accountCount; i++) {
+                String accountId = String.valueOf(i);
+                BigDecimal balance = transferRepository.getAccount(accountId).getBalance();
+                assertEquals(balance, balanceInDatabase(accountId));
+                inMemoryTotal = inMemoryTotal.add(balance);
+            }
+            assertEquals(new BigDecimal("10000.00"), inMemoryTotal);
+            assertEquals(new BigDecimal("10000.00"),
+                    jdbcTemplate.queryForObject("SELECT SUM(balance) FROM account", BigDecimal.class));
+        } finally {
+            transferRepository.destroy();
+        }
+    }
+
+    private AccountsRepositoryJdbc newRepository(int nearCacheSize, long flushIntervalMillis, int flushBatchSize,
+                                                 int maxPendingWrites) {
+        return new AccountsRepositoryJdbc(jdbcTemplate, new DataSourceTransactionManager(database),
+                nearCacheSize, flushIntervalMillis, flushBatchSize, maxPendingWrites);
+    }
+
+    private void awaitNoPendingWrites(AccountsRepositoryJdbc repository) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (repository.getMetrics().getPendingWrites() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private BigDecimal balanceInDatabase(String accountId) {
+        return jdbcTemplate.queryForObject("SELECT balance FROM account WHERE account_id = ?", BigDecimal.class,
+                accountId);
+    }
+}
@@ -0,0 +1,49 @@
+package com.dws.challenge;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountsRepositoryJdbc;
+import com.dws.challenge.service.AccountsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"accounts.repository=jdbc", "accounts.jdbc.near-cache-size=2"})
+class AccountsServiceJdbcTest {
+
+    @Autowired
+    private AccountsService accountsService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        accountsService.getAccountsRepository().clearAccounts();
+    }
+
+    @Test
+    void testTransferMoney_persistedOnFlush() {
+        accountsService.createAccount(new Account("1", new BigDecimal("1000.00")));
+        accountsService.createAccount(new Account("2", new BigDecimal("500.00")));
+
+        accountsService.transferMoney("1", "2", new BigDecimal("200.00"));
+
+        AccountsRepositoryJdbc accountsRepository = (AccountsRepositoryJdbc) accountsService.getAccountsRepository();
+        accountsRepository.flush();
+
+        assertEquals(new BigDecimal("800.00"), balanceInDatabase("1"));
+        assertEquals(new BigDecimal("700.00"), balanceInDatabase("2"));
+        assertEquals(0, accountsRepository.getMetrics().getPendingWrites());
+    }
+
+    private BigDecimal balanceInDatabase(String accountId) {
+        return jdbcTemplate.queryForObject("SELECT balance FROM account WHERE account_id = ?", BigDecimal.class,
+                accountId);
+    }
+}